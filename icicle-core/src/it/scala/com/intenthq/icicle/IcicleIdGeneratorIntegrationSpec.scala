@@ -92,6 +92,17 @@ object IcicleIdGeneratorIntegrationSpec extends Specification {
       (underTest.generateId().isPresent must beTrue) and
         (redis.get(sequenceRedisKey) must_== "-1")
     }
+
+    "lease the rest of the sequence and roll it over" in new Context {
+      redis.set(logicalShardIdRedisKey, "1")
+      redis.set(sequenceRedisKey, "4000")
+
+      val result = underTest.generateIdLease()
+      (result.isPresent must beTrue) and
+        (redis.get(sequenceRedisKey) must_== "-1") and
+        (result.get().getStartSequence must_== 4001) and
+        (result.get().getEndSequence must_== 4095)
+    }
   }
 
   trait Context extends Scope with Mockito with ThrownExpectations {
@@ -0,0 +1,80 @@
+package com.intenthq.icicle;
+
+import com.intenthq.icicle.journal.IdReservationJournal;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Generates IDs one at a time from batches prefetched from Redis, so that most IDs cost no round trip at all.
+ *
+ * Prefetched IDs are kept in an IdReservationJournal rather than on the heap. If the journal is backed by a file, a
+ * restarted process picks up the IDs it had already reserved (so long as they are still fresh) instead of going back to
+ * Redis cold, and IDs handed out before the restart are never handed out again.
+ *
+ * Note that IDs are only k-ordered with those generated by other processes up to the freshness bound of the journal,
+ * as a prefetched ID carries the time it was reserved at rather than the time it was handed out.
+ */
+public class BufferedIcicleIdGenerator {
+  private final IcicleIdGenerator icicleIdGenerator;
+  private final IdReservationJournal journal;
+  private final long batchSize;
+
+  /**
+   * Create a buffered ID generator that prefetches batches of up to 4096 IDs at a time.
+   *
+   * @param icicleIdGenerator The generator to prefetch batches of IDs from.
+   * @param journal The journal to keep prefetched IDs in.
+   */
+  public BufferedIcicleIdGenerator(final IcicleIdGenerator icicleIdGenerator, final IdReservationJournal journal) {
+    this(icicleIdGenerator, journal, IcicleIdGenerator.MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Create a buffered ID generator that prefetches batches of up to `batchSize` IDs at a time.
+   *
+   * @param icicleIdGenerator The generator to prefetch batches of IDs from.
+   * @param journal The journal to keep prefetched IDs in.
+   * @param batchSize The number of IDs to ask for each time the journal runs out.
+   */
+  public BufferedIcicleIdGenerator(final IcicleIdGenerator icicleIdGenerator, final IdReservationJournal journal, final long batchSize) {
+    this.icicleIdGenerator = icicleIdGenerator;
+    this.journal = journal;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Generate an ID, taking it from the journal if possible and otherwise prefetching a new batch into the journal.
+   *
+   * @return An optional ID. It will be present if it was successful, and absent if the journal was empty and for any
+   * reason prefetching a new batch failed even after the retries.
+   */
+  public synchronized Optional<Id> generateId() {
+    Optional<Id> id = journal.take();
+
+    if (id.isPresent()) {
+      return id;
+    }
+
+    Optional<List<Id>> batch = icicleIdGenerator.generateIdBatch(batchSize);
+
+    if (!batch.isPresent()) {
+      return Optional.empty();
+    }
+
+    // A batch always comes from a single logical shard and millisecond, so its IDs are contiguous.
+    List<Id> ids = batch.get();
+    Id first = ids.get(0);
+    long startId = first.getId();
+    long endId = ids.get(ids.size() - 1).getId();
+    long logicalShardId = (startId >>> IcicleIdGenerator.LOGICAL_SHARD_ID_SHIFT) & IcicleIdGenerator.MAX_LOGICAL_SHARD_ID;
+
+    // The journal was just found empty, so this can't fail for lack of a free slot. The first ID is handed out straight
+    // away, so it never needs to be recorded.
+    if (startId < endId) {
+      journal.reserve(startId + 1, endId, logicalShardId, first.getTime());
+    }
+
+    return Optional.of(first);
+  }
+}
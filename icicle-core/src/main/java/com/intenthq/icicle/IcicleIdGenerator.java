@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -41,6 +42,10 @@ public class IcicleIdGenerator {
   private static final String LUA_SCRIPT_RESOURCE_PATH = "/id-generation.lua";
   private static final int DEFAULT_MAX_ATTEMPTS = 5;
 
+  // Passed to the Lua script to choose between leasing the rest of the sequence space or incrementing by a batch size.
+  private static final String LUA_SCRIPT_LEASE = "1";
+  private static final String LUA_SCRIPT_NO_LEASE = "0";
+
   // We specify an custom epoch that we will use to fit our timestamps within the bounds of the 41 bits we have
   // available. This gives us a range of ~69 years within which we can generate IDs.
   //
@@ -50,15 +55,17 @@ public class IcicleIdGenerator {
   private static final int LOGICAL_SHARD_ID_BITS = 10;
   private static final int SEQUENCE_BITS = 12;
 
-  private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + LOGICAL_SHARD_ID_BITS;
-  private static final int LOGICAL_SHARD_ID_SHIFT = SEQUENCE_BITS;
+  // Public so that consumers of IDs can recover the timestamp (in milliseconds since the custom epoch) from an ID
+  // without needing to know the rest of the layout.
+  public static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + LOGICAL_SHARD_ID_BITS;
+  static final int LOGICAL_SHARD_ID_SHIFT = SEQUENCE_BITS;
 
   // These three bitopped constants are also used as bit masks for the maximum value of the data they represent.
   private static final long MAX_SEQUENCE = ~(-1L << SEQUENCE_BITS);
-  private static final long MAX_LOGICAL_SHARD_ID = ~(-1L << LOGICAL_SHARD_ID_BITS);
+  static final long MAX_LOGICAL_SHARD_ID = ~(-1L << LOGICAL_SHARD_ID_BITS);
   private static final long MIN_LOGICAL_SHARD_ID = 1L;
 
-  private static final long MAX_BATCH_SIZE = MAX_SEQUENCE + 1;
+  static final long MAX_BATCH_SIZE = MAX_SEQUENCE + 1;
 
   private static final long ONE_SECOND_IN_MILLIS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.SECONDS);
   private static final long ONE_MILLI_IN_MICRO_SECS = TimeUnit.MICROSECONDS.convert(1, TimeUnit.MILLISECONDS);
@@ -165,9 +172,37 @@ public class IcicleIdGenerator {
    public Optional<List<Id>> generateIdBatch(final long batchSize) {
      validateBatchSize(batchSize);
 
-     for (int retries = 0; retries < maximumAttempts; retries++) {
+     return withRetries(redis -> generateIdsUsingRedis(redis, batchSize));
+   }
+
+  /**
+   * Lease the rest of the sequence space for the current millisecond from one of the Redis servers. It will try to
+   * lease IDs, retrying up to `maximumAttempts` times.
+   *
+   * This is intended for clients that need IDs at a very high rate. A lease only describes the range of IDs it covers,
+   * so none of the work of building the IDs is done until they are taken from it. Note that every lease rolls the
+   * sequence in Redis, so the server it came from will not hand out more IDs until the next millisecond.
+   *
+   * @return An optional lease. It will be present if it was successful, and absent if for any reason the lease failed
+   * even after the retries. The lease will cover between 1 and 4096 IDs depending on how much of the sequence had
+   * already been used in Redis.
+   */
+  public Optional<IdLease> generateIdLease() {
+    return withRetries(this::leaseIdsUsingRedis);
+  }
+
+  /**
+   * Run the given operation against the next Redis server in the pool, moving on to the next server and retrying up to
+   * `maximumAttempts` times if it fails.
+   *
+   * @param operation The operation to run against a Redis server.
+   * @param <T> The type of the result of the operation.
+   * @return The optional result of the operation. Absent if it failed even after the retries.
+   */
+  private <T> Optional<T> withRetries(final Function<Redis, Optional<T>> operation) {
+    for (int retries = 0; retries < maximumAttempts; retries++) {
       try {
-        Optional<List<Id>> result = generateIdsUsingRedis(roundRobinRedisPool.getNextRedis(), batchSize);
+        Optional<T> result = operation.apply(roundRobinRedisPool.getNextRedis());
 
         // We'll retry if the ID didn't generate for whatever reason.
         if (result.isPresent()) {
@@ -198,8 +233,40 @@ public class IcicleIdGenerator {
    * null. The number of IDs may be less than or equal to the batch size depending on if the sequence needs to roll in Redis.
    */
   private Optional<List<Id>> generateIdsUsingRedis(final Redis redis, final long batchSize) {
-    Optional<IcicleRedisResponse> optionalIcicleRedisResponse = executeOrLoadLuaScript(redis, batchSize);
+    Optional<IdLease> optionalIdLease = leaseFromResponse(executeOrLoadLuaScript(redis, batchSize, false));
+
+    if (!optionalIdLease.isPresent()) {
+      return Optional.empty();
+    }
+
+    IdLease idLease = optionalIdLease.get();
 
+    List<Id> ids = new ArrayList<>();
+    for (long sequence = idLease.getStartSequence(); sequence <= idLease.getEndSequence(); sequence ++) {
+      ids.add(new Id(idLease.getId(sequence), idLease.getTime()));
+    }
+
+    return Optional.of(ids);
+  }
+
+  /**
+   * Lease the rest of the sequence space for the current millisecond using the given redis instance.
+   *
+   * @param redis The redis instance to lease IDs from.
+   * @return An optional lease. It will be present if it was successful, and absent if for any reason the response was
+   * null.
+   */
+  private Optional<IdLease> leaseIdsUsingRedis(final Redis redis) {
+    return leaseFromResponse(executeOrLoadLuaScript(redis, MAX_BATCH_SIZE, true));
+  }
+
+  /**
+   * Turn the response from the Lua script into a lease on the range of IDs it describes.
+   *
+   * @param optionalIcicleRedisResponse The optional response from executing the Lua script.
+   * @return An optional lease. Absent if the response was.
+   */
+  private Optional<IdLease> leaseFromResponse(final Optional<IcicleRedisResponse> optionalIcicleRedisResponse) {
     if (!optionalIcicleRedisResponse.isPresent()) {
       return Optional.empty();
     }
@@ -211,30 +278,12 @@ public class IcicleIdGenerator {
     // these values.
     long timestamp = (icicleRedisResponse.getTimeSeconds() * ONE_SECOND_IN_MILLIS)
         + (icicleRedisResponse.getTimeMicroseconds() / ONE_MILLI_IN_MICRO_SECS);
-    long shiftedTimestamp = (timestamp - customEpoch) << TIMESTAMP_SHIFT;
 
     long logicalShardId = icicleRedisResponse.getLogicalShardId();
     validateLogicalShardId(logicalShardId);
-    long shiftedLogicalShardId = logicalShardId << LOGICAL_SHARD_ID_SHIFT;
 
-    List<Id> ids = new ArrayList<>();
-    for (long sequence = icicleRedisResponse.getStartSequence(); sequence <= icicleRedisResponse.getEndSequence(); sequence ++) {
-      // Here's the fun bit-shifting. The purpose of this is to get a 64-bit ID of the following
-      // format:
-      //
-      //  ABBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBCCCCCCCCCCDDDDDDDDDDDD
-      //
-      // Where:
-      //   * A is the reserved signed bit of a Java long.
-      //   * B is the timestamp in milliseconds since custom epoch bits, 41 in total.
-      //   * C is the logical shard ID, 10 bits in total.
-      //   * D is the sequence, 12 bits in total.
-      long id = shiftedTimestamp | shiftedLogicalShardId | sequence;
-
-      ids.add(new Id(id, timestamp));
-    }
-
-    return Optional.of(ids);
+    return Optional.of(new IdLease(timestamp, customEpoch, logicalShardId,
+                                   icicleRedisResponse.getStartSequence(), icicleRedisResponse.getEndSequence()));
   }
 
   /**
@@ -253,10 +302,11 @@ public class IcicleIdGenerator {
    *
    * @param redis The redis instance to use to execute or load the Lua script with.
    * @param batchSize The number to increment the sequence by in Redis.
+   * @param lease Whether to lease the rest of the sequence space instead of incrementing by `batchSize`.
    * @return The result of executing the Lua script.
    */
-  private Optional<IcicleRedisResponse> executeOrLoadLuaScript(final Redis redis, final long batchSize) {
-    Optional<IcicleRedisResponse> response = executeLuaScript(redis, batchSize);
+  private Optional<IcicleRedisResponse> executeOrLoadLuaScript(final Redis redis, final long batchSize, final boolean lease) {
+    Optional<IcicleRedisResponse> response = executeLuaScript(redis, batchSize, lease);
 
     // Great! The script was already loaded and ran, so we saved a call.
     if (response.isPresent()) {
@@ -265,7 +315,7 @@ public class IcicleIdGenerator {
 
     // Otherwise we need to load and try again, failing if it doesn't work the second time.
     redis.loadLuaScript(luaScript);
-    return executeLuaScript(redis, batchSize);
+    return executeLuaScript(redis, batchSize, lease);
   }
 
   /**
@@ -273,14 +323,16 @@ public class IcicleIdGenerator {
    *
    * @param redis The redis instance to use to execute the Lua script with.
    * @param batchSize The number to increment the sequence by in Redis.
+   * @param lease Whether to lease the rest of the sequence space instead of incrementing by `batchSize`.
    * @return The optional result of executing the Lua script. Absent if the Lua script referenced by the SHA was missing
    * when it was attempted to be executed.
    */
-  private Optional<IcicleRedisResponse> executeLuaScript(final Redis redis, final long batchSize) {
+  private Optional<IcicleRedisResponse> executeLuaScript(final Redis redis, final long batchSize, final boolean lease) {
     List<String> args = Arrays.asList(String.valueOf(MAX_SEQUENCE),
                                       String.valueOf(MIN_LOGICAL_SHARD_ID),
                                       String.valueOf(MAX_LOGICAL_SHARD_ID),
-                                      String.valueOf(batchSize));
+                                      String.valueOf(batchSize),
+                                      lease ? LUA_SCRIPT_LEASE : LUA_SCRIPT_NO_LEASE);
     return redis.evalLuaScript(luaScriptSha, args);
   }
 
@@ -0,0 +1,121 @@
+package com.intenthq.icicle;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a lease on a range of sequence numbers for a single millisecond and logical shard, as handed out by the
+ * IdGenerator.
+ *
+ * Rather than materialising every ID up front, a lease only holds the four values that describe the range, and builds
+ * each ID when it is taken. This lets a single call to Redis back thousands of IDs without any per-ID work until they
+ * are actually used.
+ *
+ * IDs can be taken from a lease by multiple threads at once, and each will only ever be handed out once.
+ */
+public class IdLease {
+  /**
+   * The timestamp the leased IDs were created at, in milliseconds.
+   */
+  private final long time;
+
+  private final long logicalShardId;
+  private final long startSequence;
+  private final long endSequence;
+
+  /**
+   * The timestamp and logical shard ID bits shared by every ID in the lease, ready to be combined with a sequence.
+   */
+  private final long idPrefix;
+
+  private final AtomicLong nextSequence;
+
+  /**
+   * Create a lease on the given range of sequence numbers.
+   *
+   * @param time The timestamp the leased IDs were created at, in milliseconds.
+   * @param customEpoch The custom epoch the IDs are generated against, in milliseconds.
+   * @param logicalShardId The logical shard ID of the Redis node the lease came from.
+   * @param startSequence The first sequence number in the lease.
+   * @param endSequence The last sequence number in the lease, inclusive.
+   */
+  public IdLease(final long time, final long customEpoch, final long logicalShardId, final long startSequence, final long endSequence) {
+    this.time = time;
+    this.logicalShardId = logicalShardId;
+    this.startSequence = startSequence;
+    this.endSequence = endSequence;
+    this.idPrefix = ((time - customEpoch) << IcicleIdGenerator.TIMESTAMP_SHIFT)
+        | (logicalShardId << IcicleIdGenerator.LOGICAL_SHARD_ID_SHIFT);
+    this.nextSequence = new AtomicLong(startSequence);
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public long getLogicalShardId() {
+    return logicalShardId;
+  }
+
+  public long getStartSequence() {
+    return startSequence;
+  }
+
+  public long getEndSequence() {
+    return endSequence;
+  }
+
+  /**
+   * @return The total number of IDs covered by the lease.
+   */
+  public long size() {
+    return endSequence - startSequence + 1;
+  }
+
+  /**
+   * @return The number of IDs that have not been taken from the lease yet.
+   */
+  public long remaining() {
+    return Math.max(0, endSequence - nextSequence.get() + 1);
+  }
+
+  /**
+   * Take the next ID from the lease.
+   *
+   * @return An optional ID. It will be absent if every ID in the lease has already been taken.
+   */
+  public Optional<Id> nextId() {
+    long sequence = nextSequence.getAndIncrement();
+
+    if (sequence > endSequence) {
+      return Optional.empty();
+    }
+
+    return Optional.of(new Id(getId(sequence), time));
+  }
+
+  /**
+   * Build the ID for the given sequence number in the lease, without taking it. This is useful to find the bounds of
+   * the lease, e.g. `getId(getStartSequence())`.
+   *
+   * @param sequence A sequence number between the start and end sequence of the lease.
+   * @return The ID for the given sequence number.
+   */
+  public long getId(final long sequence) {
+    if (sequence < startSequence || sequence > endSequence) {
+      throw new IllegalArgumentException("Given sequence is outside of the lease.");
+    }
+
+    // Here's the fun bit-shifting. The purpose of this is to get a 64-bit ID of the following
+    // format:
+    //
+    //  ABBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBCCCCCCCCCCDDDDDDDDDDDD
+    //
+    // Where:
+    //   * A is the reserved signed bit of a Java long.
+    //   * B is the timestamp in milliseconds since custom epoch bits, 41 in total.
+    //   * C is the logical shard ID, 10 bits in total.
+    //   * D is the sequence, 12 bits in total.
+    return idPrefix | sequence;
+  }
+}
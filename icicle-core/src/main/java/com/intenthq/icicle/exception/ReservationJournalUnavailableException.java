@@ -0,0 +1,11 @@
+package com.intenthq.icicle.exception;
+
+/**
+ * Exception thrown if an ID reservation journal file cannot be used, either because it is already in use or
+ * because it is not a valid journal.
+ */
+public class ReservationJournalUnavailableException extends RuntimeException {
+  public ReservationJournalUnavailableException(final String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,362 @@
+package com.intenthq.icicle.journal;
+
+import com.intenthq.icicle.Id;
+import com.intenthq.icicle.exception.ReservationJournalUnavailableException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.Optional;
+
+/**
+ * A journal of ranges of IDs that have been reserved from Redis but not yet handed out, kept outside of the Java heap.
+ *
+ * When backed by a file, the journal is memory-mapped, so every write lands in the OS page cache immediately and
+ * survives the process restarting. A restarted process can then carry on handing out the IDs it had already reserved
+ * without a round trip to Redis. When not backed by a file, the same layout is kept in a direct buffer.
+ *
+ * The journal is a fixed number of slots, each holding one range as the following record:
+ *
+ * 8 byte next ID + 8 byte end ID + 8 byte timestamp + 4 byte logical shard ID + 4 bytes unused
+ *
+ * A slot is empty when its next ID is zero, which is never a valid ID as logical shard IDs start from 1. The next ID is
+ * always written last when a range is reserved, and is moved forward *before* an ID is handed out, so a crash at any
+ * point can lose IDs but never hand the same one out twice.
+ *
+ * Ranges older than `maximumAgeMillis` are discarded rather than handed out, as an ID with a stale timestamp would no
+ * longer reflect the time it was actually used at.
+ *
+ * Note that surviving a crash of the whole machine (rather than just the process) additionally requires calling
+ * `force()` after each change, which is much more expensive.
+ */
+public class IdReservationJournal implements Closeable {
+  private static final int DEFAULT_SLOTS = 16;
+
+  // "IcicleRJ" in ASCII.
+  private static final long MAGIC = 0x496369636c65524aL;
+  private static final int VERSION = 1;
+
+  // Header: 8 byte magic + 4 byte version + 4 byte number of slots.
+  private static final int HEADER_SIZE = 16;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 8;
+  private static final int SLOTS_OFFSET = 12;
+
+  private static final int RECORD_SIZE = 32;
+  private static final int NEXT_ID_OFFSET = 0;
+  private static final int END_ID_OFFSET = 8;
+  private static final int TIMESTAMP_OFFSET = 16;
+  private static final int LOGICAL_SHARD_ID_OFFSET = 24;
+
+  private static final long EMPTY = 0L;
+
+  private final ByteBuffer buffer;
+  private final int slots;
+  private final long maximumAgeMillis;
+  private final Clock clock;
+
+  private final FileChannel channel;
+  private final FileLock lock;
+
+  // The slot we are currently handing IDs out of, or -1 if we need to look for one.
+  private int currentSlot = -1;
+
+  /**
+   * Create a journal held in off-heap memory with 16 slots. IDs reserved in it will not survive a restart.
+   *
+   * @param maximumAgeMillis How old a reserved range can be, in milliseconds, before it is discarded.
+   */
+  public IdReservationJournal(final long maximumAgeMillis) {
+    this(DEFAULT_SLOTS, maximumAgeMillis);
+  }
+
+  /**
+   * Create a journal held in off-heap memory. IDs reserved in it will not survive a restart.
+   *
+   * @param slots The number of ranges that can be reserved at once.
+   * @param maximumAgeMillis How old a reserved range can be, in milliseconds, before it is discarded.
+   */
+  public IdReservationJournal(final int slots, final long maximumAgeMillis) {
+    this(slots, maximumAgeMillis, Clock.systemUTC());
+  }
+
+  /**
+   * Create or re-open a journal memory-mapped from the given file, with 16 slots if the file is new.
+   *
+   * @param path The file to keep the journal in.
+   * @param maximumAgeMillis How old a reserved range can be, in milliseconds, before it is discarded.
+   * @throws ReservationJournalUnavailableException If the file is already in use or is not a journal.
+   * @throws UncheckedIOException If the file could not be opened or mapped.
+   */
+  public IdReservationJournal(final Path path, final long maximumAgeMillis) {
+    this(path, DEFAULT_SLOTS, maximumAgeMillis);
+  }
+
+  /**
+   * Create or re-open a journal memory-mapped from the given file.
+   *
+   * @param path The file to keep the journal in.
+   * @param slots The number of ranges that can be reserved at once. Only used if the file is new, otherwise the number
+   *              of slots the file was created with is kept.
+   * @param maximumAgeMillis How old a reserved range can be, in milliseconds, before it is discarded.
+   * @throws ReservationJournalUnavailableException If the file is already in use or is not a journal.
+   * @throws UncheckedIOException If the file could not be opened or mapped.
+   */
+  public IdReservationJournal(final Path path, final int slots, final long maximumAgeMillis) {
+    this(path, slots, maximumAgeMillis, Clock.systemUTC());
+  }
+
+  IdReservationJournal(final int slots, final long maximumAgeMillis, final Clock clock) {
+    validateSlots(slots);
+
+    this.buffer = ByteBuffer.allocateDirect(HEADER_SIZE + slots * RECORD_SIZE);
+    this.slots = slots;
+    this.maximumAgeMillis = maximumAgeMillis;
+    this.clock = clock;
+    this.channel = null;
+    this.lock = null;
+
+    writeHeader();
+  }
+
+  IdReservationJournal(final Path path, final int slots, final long maximumAgeMillis, final Clock clock) {
+    validateSlots(slots);
+
+    this.maximumAgeMillis = maximumAgeMillis;
+    this.clock = clock;
+
+    try {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open the ID reservation journal at " + path, e);
+    }
+
+    try {
+      // If two processes shared a journal they could both hand out the same IDs, so we refuse to.
+      this.lock = tryLock(channel);
+      if (lock == null) {
+        throw new ReservationJournalUnavailableException(
+            "The ID reservation journal at " + path + " is already in use.");
+      }
+
+      boolean isNew = channel.size() == 0;
+      long size = isNew ? HEADER_SIZE + (long) slots * RECORD_SIZE : channel.size();
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+      if (isNew) {
+        this.slots = slots;
+        writeHeader();
+      } else {
+        this.slots = readHeader(path, size);
+      }
+    } catch (IOException e) {
+      closeQuietly();
+      throw new UncheckedIOException("Could not map the ID reservation journal at " + path, e);
+    } catch (RuntimeException e) {
+      closeQuietly();
+      throw e;
+    }
+  }
+
+  /**
+   * Record a range of IDs as reserved, so they can be handed out by `take()`.
+   *
+   * @param startId The first ID in the range.
+   * @param endId The last ID in the range, inclusive.
+   * @param logicalShardId The logical shard ID of the Redis node the range came from.
+   * @param timestamp The time the range was generated at, in milliseconds.
+   * @return True if the range was recorded, or false if every slot is already in use.
+   */
+  public synchronized boolean reserve(final long startId, final long endId, final long logicalShardId, final long timestamp) {
+    if (startId <= EMPTY || endId < startId) {
+      throw new IllegalArgumentException("Given range of IDs is empty or invalid.");
+    }
+
+    for (int slot = 0; slot < slots; slot++) {
+      int offset = recordOffset(slot);
+
+      if (buffer.getLong(offset + NEXT_ID_OFFSET) == EMPTY) {
+        buffer.putLong(offset + END_ID_OFFSET, endId);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        buffer.putInt(offset + LOGICAL_SHARD_ID_OFFSET, (int) logicalShardId);
+
+        // This publishes the record, so it must come last.
+        buffer.putLong(offset + NEXT_ID_OFFSET, startId);
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Take the next unconsumed ID out of the journal, discarding any ranges that have gone stale along the way. IDs are
+   * taken from the oldest range first, so they are handed out in order.
+   *
+   * @return An optional ID. It will be absent if there are no fresh reserved IDs left.
+   */
+  public synchronized Optional<Id> take() {
+    if (currentSlot < 0 || !isFresh(currentSlot)) {
+      currentSlot = findOldestFreshSlot();
+
+      if (currentSlot < 0) {
+        return Optional.empty();
+      }
+    }
+
+    int offset = recordOffset(currentSlot);
+    long id = buffer.getLong(offset + NEXT_ID_OFFSET);
+    long timestamp = buffer.getLong(offset + TIMESTAMP_OFFSET);
+
+    // Consume the ID in the journal before handing it out.
+    if (id < buffer.getLong(offset + END_ID_OFFSET)) {
+      buffer.putLong(offset + NEXT_ID_OFFSET, id + 1);
+    } else {
+      buffer.putLong(offset + NEXT_ID_OFFSET, EMPTY);
+      currentSlot = -1;
+    }
+
+    return Optional.of(new Id(id, timestamp));
+  }
+
+  /**
+   * Count the IDs left in fresh ranges, without consuming them.
+   *
+   * @return The number of IDs that can still be taken.
+   */
+  public synchronized long remaining() {
+    long remaining = 0;
+
+    for (int slot = 0; slot < slots; slot++) {
+      if (isFresh(slot)) {
+        int offset = recordOffset(slot);
+        remaining += buffer.getLong(offset + END_ID_OFFSET) - buffer.getLong(offset + NEXT_ID_OFFSET) + 1;
+      }
+    }
+
+    return remaining;
+  }
+
+  /**
+   * Force any changes to the journal out to the file, so they also survive the machine crashing. Does nothing if the
+   * journal is not backed by a file.
+   */
+  public synchronized void force() {
+    if (buffer instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) buffer).force();
+    }
+  }
+
+  /**
+   * Release the lock on the journal file. The journal must not be used after this.
+   *
+   * @throws IOException If the file could not be closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      force();
+      channel.close();
+    }
+  }
+
+  /**
+   * Find the fresh, non-empty slot holding the smallest IDs, emptying any stale slots found along the way.
+   *
+   * @return The slot index, or -1 if there are none.
+   */
+  private int findOldestFreshSlot() {
+    int oldestSlot = -1;
+    long oldestId = Long.MAX_VALUE;
+
+    for (int slot = 0; slot < slots; slot++) {
+      int offset = recordOffset(slot);
+      long id = buffer.getLong(offset + NEXT_ID_OFFSET);
+
+      if (id == EMPTY) {
+        continue;
+      }
+
+      if (!isFresh(slot)) {
+        buffer.putLong(offset + NEXT_ID_OFFSET, EMPTY);
+        continue;
+      }
+
+      if (id < oldestId) {
+        oldestId = id;
+        oldestSlot = slot;
+      }
+    }
+
+    return oldestSlot;
+  }
+
+  private boolean isFresh(final int slot) {
+    int offset = recordOffset(slot);
+    return buffer.getLong(offset + NEXT_ID_OFFSET) != EMPTY
+        && clock.millis() - buffer.getLong(offset + TIMESTAMP_OFFSET) <= maximumAgeMillis;
+  }
+
+  private static int recordOffset(final int slot) {
+    return HEADER_SIZE + slot * RECORD_SIZE;
+  }
+
+  private void writeHeader() {
+    buffer.putLong(MAGIC_OFFSET, MAGIC);
+    buffer.putInt(VERSION_OFFSET, VERSION);
+    buffer.putInt(SLOTS_OFFSET, slots);
+  }
+
+  /**
+   * Check the header of an existing journal file is one we understand, and that the file is big enough for it.
+   *
+   * @return The number of slots in the journal.
+   */
+  private int readHeader(final Path path, final long size) {
+    if (size < HEADER_SIZE
+        || buffer.getLong(MAGIC_OFFSET) != MAGIC
+        || buffer.getInt(VERSION_OFFSET) != VERSION
+        || buffer.getInt(SLOTS_OFFSET) < 1
+        || size < HEADER_SIZE + (long) buffer.getInt(SLOTS_OFFSET) * RECORD_SIZE) {
+      throw new ReservationJournalUnavailableException("The file at " + path + " is not a valid ID reservation journal.");
+    }
+
+    return buffer.getInt(SLOTS_OFFSET);
+  }
+
+  /**
+   * Try to take an exclusive lock on the journal file, treating a lock already held within this JVM the same as one held
+   * by another process.
+   *
+   * @return The lock, or null if it is already held.
+   */
+  private static FileLock tryLock(final FileChannel channel) throws IOException {
+    try {
+      return channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      return null;
+    }
+  }
+
+  private void validateSlots(final int slots) {
+    if (slots < 1) {
+      throw new IllegalArgumentException("Given number of journal slots is less than 1.");
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // We're already failing, so the original exception is the one worth reporting.
+    }
+  }
+}
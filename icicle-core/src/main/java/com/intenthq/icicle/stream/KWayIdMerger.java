@@ -0,0 +1,125 @@
+package com.intenthq.icicle.stream;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Merges a number of ID-ordered sources into a single ID-ordered stream.
+ *
+ * As the timestamp occupies the most significant bits of an ID, ordering by the raw long value of an ID is the same as
+ * ordering by time, then logical shard ID, then sequence. This lets us merge streams of IDs coming from many producers
+ * (e.g. one per Redis node) by comparing primitive longs alone.
+ *
+ * Only the current head of each source is held in memory, so the merge uses memory proportional to the number of
+ * sources rather than the number of IDs. Each ID costs O(log k) comparisons, where k is the number of sources.
+ *
+ * Each source must itself be ordered. If a source is only almost ordered, wrap it in a SkewWindowIdReorderer first.
+ */
+public class KWayIdMerger implements PrimitiveIterator.OfLong {
+  private final PrimitiveIterator.OfLong[] sources;
+
+  // The next ID of each source, indexed by source.
+  private final long[] heads;
+
+  // A binary min-heap of source indexes, ordered by the head ID of each source.
+  private final int[] heap;
+  private int heapSize;
+
+  /**
+   * Creates a new merger from the given list of ID-ordered sources.
+   *
+   * @param sources A list of sources, each of which must return IDs in ascending order.
+   */
+  public KWayIdMerger(final List<PrimitiveIterator.OfLong> sources) {
+    if (sources.isEmpty()) {
+      throw new IllegalArgumentException("Given list of ID sources is empty.");
+    }
+
+    this.sources = sources.toArray(new PrimitiveIterator.OfLong[sources.size()]);
+    this.heads = new long[this.sources.length];
+    this.heap = new int[this.sources.length];
+
+    for (int source = 0; source < this.sources.length; source++) {
+      if (this.sources[source].hasNext()) {
+        heads[source] = this.sources[source].nextLong();
+        heap[heapSize++] = source;
+      }
+    }
+
+    for (int i = (heapSize >>> 1) - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return heapSize > 0;
+  }
+
+  /**
+   * Returns the smallest ID out of the heads of all the sources, and advances the source it came from.
+   *
+   * @return The next ID in the merged stream.
+   */
+  @Override
+  public long nextLong() {
+    if (heapSize == 0) {
+      throw new NoSuchElementException("All ID sources are exhausted.");
+    }
+
+    int source = heap[0];
+    long id = heads[source];
+
+    if (sources[source].hasNext()) {
+      // The source stays at the top of the heap with its new head, which can only have moved down.
+      heads[source] = sources[source].nextLong();
+    } else {
+      heap[0] = heap[--heapSize];
+    }
+
+    if (heapSize > 0) {
+      siftDown(0);
+    }
+
+    return id;
+  }
+
+  /**
+   * Move the source at the given heap position down until neither of its children have a smaller head.
+   *
+   * @param position The position in the heap to sift down from.
+   */
+  private void siftDown(final int position) {
+    int source = heap[position];
+    int i = position;
+
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= heapSize) {
+        break;
+      }
+
+      if (child + 1 < heapSize && lessThan(heap[child + 1], heap[child])) {
+        child++;
+      }
+
+      if (!lessThan(heap[child], source)) {
+        break;
+      }
+
+      heap[i] = heap[child];
+      i = child;
+    }
+
+    heap[i] = source;
+  }
+
+  /**
+   * Compare the heads of two sources. Ties are broken on the source index so the merge is stable with respect to the
+   * order the sources were given in.
+   */
+  private boolean lessThan(final int sourceA, final int sourceB) {
+    return heads[sourceA] < heads[sourceB] || (heads[sourceA] == heads[sourceB] && sourceA < sourceB);
+  }
+}
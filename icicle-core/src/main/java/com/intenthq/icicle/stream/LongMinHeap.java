@@ -0,0 +1,83 @@
+package com.intenthq.icicle.stream;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of primitive longs with a fixed maximum capacity, avoiding the boxing a PriorityQueue would need.
+ *
+ * The backing array starts small and grows as needed, so a large capacity costs nothing until it is actually used.
+ */
+class LongMinHeap {
+  private static final int INITIAL_SIZE = 64;
+
+  private final int capacity;
+  private long[] values;
+  private int size;
+
+  LongMinHeap(final int capacity) {
+    this.capacity = capacity;
+    this.values = new long[Math.min(capacity, INITIAL_SIZE)];
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean isFull() {
+    return size == capacity;
+  }
+
+  long peek() {
+    return values[0];
+  }
+
+  void add(final long value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, (int) Math.min(capacity, (long) values.length << 1));
+    }
+
+    int i = size++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (values[parent] <= value) {
+        break;
+      }
+
+      values[i] = values[parent];
+      i = parent;
+    }
+
+    values[i] = value;
+  }
+
+  long poll() {
+    long head = values[0];
+    long value = values[--size];
+
+    int i = 0;
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+
+      if (child + 1 < size && values[child + 1] < values[child]) {
+        child++;
+      }
+
+      if (value <= values[child]) {
+        break;
+      }
+
+      values[i] = values[child];
+      i = child;
+    }
+
+    values[i] = value;
+    return head;
+  }
+}
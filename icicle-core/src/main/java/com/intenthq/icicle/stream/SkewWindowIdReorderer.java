@@ -0,0 +1,108 @@
+package com.intenthq.icicle.stream;
+
+import com.intenthq.icicle.IcicleIdGenerator;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Re-orders an almost-ordered stream of IDs, where no ID arrives more than a given time-skew window behind the newest ID
+ * seen so far. This is the shape you get from k-sorted IDs being consumed from several producers at once.
+ *
+ * IDs are buffered in a primitive min-heap, and an ID is only released once an ID has been seen whose timestamp is more
+ * than the skew window ahead of it. At that point no later ID can be smaller, so the output is fully ordered without
+ * ever sorting the whole stream.
+ *
+ * To keep memory bounded, at most `maximumBuffered` IDs are held at once. If the buffer fills up before the window has
+ * passed, the smallest ID is released early; IDs arriving later than the window (or after such an early release) are
+ * passed through in the order they can be, rather than being dropped.
+ */
+public class SkewWindowIdReorderer implements PrimitiveIterator.OfLong {
+  private static final int DEFAULT_MAXIMUM_BUFFERED = 65536;
+
+  private final PrimitiveIterator.OfLong source;
+  private final long skewWindowMillis;
+  private final LongMinHeap buffer;
+
+  private long newestTimestamp = Long.MIN_VALUE;
+
+  /**
+   * Creates a re-orderer over the given source, buffering up to 65536 IDs.
+   *
+   * @param source The almost-ordered source of IDs.
+   * @param skewWindowMillis The maximum number of milliseconds an ID may arrive behind the newest ID seen so far.
+   */
+  public SkewWindowIdReorderer(final PrimitiveIterator.OfLong source, final long skewWindowMillis) {
+    this(source, skewWindowMillis, DEFAULT_MAXIMUM_BUFFERED);
+  }
+
+  /**
+   * Creates a re-orderer over the given source, buffering up to `maximumBuffered` IDs.
+   *
+   * @param source The almost-ordered source of IDs.
+   * @param skewWindowMillis The maximum number of milliseconds an ID may arrive behind the newest ID seen so far.
+   * @param maximumBuffered The maximum number of IDs to hold in memory at once.
+   */
+  public SkewWindowIdReorderer(final PrimitiveIterator.OfLong source, final long skewWindowMillis, final int maximumBuffered) {
+    if (skewWindowMillis < 0) {
+      throw new IllegalArgumentException("Given skew window is negative.");
+    }
+
+    if (maximumBuffered < 1) {
+      throw new IllegalArgumentException("Given maximum number of buffered IDs is less than 1.");
+    }
+
+    this.source = source;
+    this.skewWindowMillis = skewWindowMillis;
+    this.buffer = new LongMinHeap(maximumBuffered);
+  }
+
+  @Override
+  public boolean hasNext() {
+    fill();
+    return !buffer.isEmpty();
+  }
+
+  @Override
+  public long nextLong() {
+    fill();
+
+    if (buffer.isEmpty()) {
+      throw new NoSuchElementException("The ID source is exhausted.");
+    }
+
+    return buffer.poll();
+  }
+
+  /**
+   * Pull IDs from the source into the buffer until the smallest buffered ID is safe to release, the buffer is full, or
+   * the source is exhausted (in which case everything left is safe to release).
+   */
+  private void fill() {
+    while (!canRelease() && source.hasNext()) {
+      long id = source.nextLong();
+      newestTimestamp = Math.max(newestTimestamp, timestampOf(id));
+      buffer.add(id);
+    }
+  }
+
+  private boolean canRelease() {
+    if (buffer.isEmpty()) {
+      return false;
+    }
+
+    // Every ID still to come has a timestamp of at least `newestTimestamp - skewWindowMillis`, so anything strictly
+    // older than that can never be preceded by a later arrival.
+    return buffer.isFull() || timestampOf(buffer.peek()) < newestTimestamp - skewWindowMillis;
+  }
+
+  /**
+   * Extract the timestamp from an ID, in milliseconds since the custom epoch it was generated with.
+   *
+   * @param id The ID to extract the timestamp from.
+   * @return The timestamp part of the ID.
+   */
+  private static long timestampOf(final long id) {
+    return id >>> IcicleIdGenerator.TIMESTAMP_SHIFT;
+  }
+}
@@ -6,17 +6,31 @@ local max_sequence = tonumber(KEYS[1])
 local min_logical_shard_id = tonumber(KEYS[2])
 local max_logical_shard_id = tonumber(KEYS[3])
 local num_ids = tonumber(KEYS[4])
+local lease = KEYS[5] == '1'
 
 if redis.call('EXISTS', lock_key) == 1 then
   redis.log(redis.LOG_NOTICE, 'Icicle: Cannot generate ID, waiting for lock to expire.')
   return redis.error_reply('Icicle: Cannot generate ID, waiting for lock to expire.')
 end
 
---[[
-Increment by a set number, this can
---]]
-local end_sequence = redis.call('INCRBY', sequence_key, num_ids)
-local start_sequence = end_sequence - num_ids + 1
+local start_sequence
+local end_sequence
+
+if lease then
+  --[[
+  Lease the rest of the sequence space for the current millisecond, whatever its size. This always rolls the sequence
+  below, so the lease can't overlap with anything handed out after it.
+  --]]
+  start_sequence = redis.call('INCR', sequence_key)
+  end_sequence = max_sequence
+else
+  --[[
+  Increment by a set number, this can
+  --]]
+  end_sequence = redis.call('INCRBY', sequence_key, num_ids)
+  start_sequence = end_sequence - num_ids + 1
+end
+
 local logical_shard_id = tonumber(redis.call('GET', logical_shard_id_key)) or -1
 
 if end_sequence >= max_sequence then
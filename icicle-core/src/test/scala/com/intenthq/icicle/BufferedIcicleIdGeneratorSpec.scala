@@ -0,0 +1,54 @@
+package com.intenthq.icicle
+
+import java.util
+import java.util.Optional
+
+import com.intenthq.icicle.journal.IdReservationJournal
+import org.specs2.matcher.ThrownExpectations
+import org.specs2.mock.Mockito
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+object BufferedIcicleIdGeneratorSpec extends Specification {
+  "#generateId" should {
+    "return an ID from the journal without generating a batch" in new Context {
+      journal.take returns Optional.of(new Id(4096, 1489959427000L))
+
+      (underTest.generateId.get.getId must_== 4096) and
+        (there were noCallsTo(icicleIdGenerator))
+    }
+
+    "generate a batch and reserve all but the first ID if the journal is empty" in new Context {
+      journal.take returns Optional.empty[Id]
+      icicleIdGenerator.generateIdBatch(10) returns Optional.of(util.Arrays.asList(
+        new Id(143322835047240136L, 1489959427000L),
+        new Id(143322835047240137L, 1489959427000L),
+        new Id(143322835047240138L, 1489959427000L)))
+
+      (underTest.generateId.get.getId must_== 143322835047240136L) and
+        (there was one(journal).reserve(143322835047240137L, 143322835047240138L, 789, 1489959427000L))
+    }
+
+    "not reserve anything if the batch has only one ID" in new Context {
+      journal.take returns Optional.empty[Id]
+      icicleIdGenerator.generateIdBatch(10) returns Optional.of(util.Arrays.asList(new Id(143322835047240136L, 1489959427000L)))
+
+      (underTest.generateId.get.getId must_== 143322835047240136L) and
+        (there was no(journal).reserve(any, any, any, any))
+    }
+
+    "return an empty optional if the journal is empty and the batch fails" in new Context {
+      journal.take returns Optional.empty[Id]
+      icicleIdGenerator.generateIdBatch(10) returns Optional.empty[util.List[Id]]
+
+      underTest.generateId.isPresent must beFalse
+    }
+  }
+
+  trait Context extends Scope with Mockito with ThrownExpectations {
+    val icicleIdGenerator = mock[IcicleIdGenerator]
+    val journal = mock[IdReservationJournal]
+
+    val underTest = new BufferedIcicleIdGenerator(icicleIdGenerator, journal, 10)
+  }
+}
@@ -111,6 +111,41 @@ object IcicleIdGeneratorSpec extends Specification {
     }
   }
 
+  "#generateIdLease" should {
+    "ask the lua script for a lease" in new Context {
+      redis.evalLuaScript(any, any) returns Optional.of(redisBatchResponse)
+
+      underTest.generateIdLease
+
+      there was one(redis).evalLuaScript(any, be_===(util.Arrays.asList("4095", "1", "1023", "4096", "1")))
+    }
+
+    "return an empty optional if `maximumAttempts` is exceeded" in new Context {
+      redis.evalLuaScript(any, any) returns Optional.empty[IcicleRedisResponse]
+
+      underTest.generateIdLease.isPresent must beFalse
+    }
+
+    "construct the lease as expected" in new Context {
+      redis.evalLuaScript(any, any) returns Optional.of(redisBatchResponse)
+
+      val result = underTest.generateIdLease
+
+      (result.isPresent must beTrue) and
+        (result.get.size must_== 457) and
+        (result.get.getLogicalShardId must_== 789) and
+        (result.get.getTime must_== 1489959427000L) and
+        (result.get.getId(456) must_== 143322835047240136L)
+    }
+
+    "fail if the logicalShardId is too big" in new Context {
+      redisBatchResponse.getLogicalShardId returns 9999
+      redis.evalLuaScript(any, any) returns Optional.of(redisBatchResponse)
+
+      underTest.generateIdLease.isPresent must beFalse
+    }
+  }
+
   trait Context extends Scope with Mockito with ThrownExpectations {
     val redis = mock[Redis]
     val roundRobinRedisPool = new RoundRobinRedisPool(util.Arrays.asList(redis))
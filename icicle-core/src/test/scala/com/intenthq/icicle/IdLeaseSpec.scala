@@ -0,0 +1,46 @@
+package com.intenthq.icicle
+
+import org.specs2.matcher.ThrownExpectations
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+object IdLeaseSpec extends Specification {
+  "#nextId" should {
+    "hand out every ID in the lease once, in order" in new Context {
+      (underTest.nextId.get.getId must_== 143322835047240134L) and
+        (underTest.nextId.get.getId must_== 143322835047240135L) and
+        (underTest.nextId.get.getId must_== 143322835047240136L) and
+        (underTest.nextId.isPresent must beFalse)
+    }
+
+    "return IDs with the time of the lease" in new Context {
+      underTest.nextId.get.getTime must_== 1489959427000L
+    }
+  }
+
+  "#remaining" should {
+    "count the IDs not taken yet" in new Context {
+      underTest.nextId
+
+      (underTest.size must_== 3) and
+        (underTest.remaining must_== 2)
+    }
+
+    "not go below zero once the lease is used up" in new Context {
+      (1 to 5).foreach(_ => underTest.nextId)
+
+      underTest.remaining must_== 0
+    }
+  }
+
+  "#getId" should {
+    "throw exception if the sequence is outside of the lease" in new Context {
+      (underTest.getId(453) must throwA[IllegalArgumentException]) and
+        (underTest.getId(457) must throwA[IllegalArgumentException])
+    }
+  }
+
+  trait Context extends Scope with ThrownExpectations {
+    val underTest = new IdLease(1489959427000L, 1455788600316L, 789, 454, 456)
+  }
+}
@@ -0,0 +1,98 @@
+package com.intenthq.icicle.journal
+
+import java.nio.file.{Files, Path}
+import java.time.{Clock, Instant, ZoneOffset}
+
+import com.intenthq.icicle.exception.ReservationJournalUnavailableException
+import org.specs2.matcher.ThrownExpectations
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+object IdReservationJournalSpec extends Specification {
+  "constructor" should {
+    "throw exception if less than 1 slot is given" in new Context {
+      new IdReservationJournal(0, maximumAgeMillis, clock) must throwA[IllegalArgumentException]
+    }
+
+    "throw exception if the file is already in use" in new FileContext {
+      val underTest = new IdReservationJournal(path, 4, maximumAgeMillis, clock)
+
+      new IdReservationJournal(path, 4, maximumAgeMillis, clock) must throwA[ReservationJournalUnavailableException]
+    }
+
+    "throw exception if the file is not a journal" in new FileContext {
+      Files.write(path, new Array[Byte](64))
+
+      new IdReservationJournal(path, 4, maximumAgeMillis, clock) must throwA[ReservationJournalUnavailableException]
+    }
+  }
+
+  "#reserve" should {
+    "throw exception if the range is invalid" in new Context {
+      (underTest.reserve(0, 10, 1, now) must throwA[IllegalArgumentException]) and
+        (underTest.reserve(10, 9, 1, now) must throwA[IllegalArgumentException])
+    }
+
+    "return false if every slot is in use" in new Context {
+      (underTest.reserve(4096, 4096, 1, now) must beTrue) and
+        (underTest.reserve(4097, 4097, 1, now) must beTrue) and
+        (underTest.reserve(4098, 4098, 1, now) must beFalse)
+    }
+  }
+
+  "#take" should {
+    "return an empty optional if nothing is reserved" in new Context {
+      underTest.take.isPresent must beFalse
+    }
+
+    "hand out every reserved ID once, in order" in new Context {
+      underTest.reserve(8192, 8193, 1, now)
+      underTest.reserve(4096, 4097, 1, now)
+
+      (underTest.take.get.getId must_== 4096) and
+        (underTest.take.get.getId must_== 4097) and
+        (underTest.take.get.getId must_== 8192) and
+        (underTest.take.get.getId must_== 8193) and
+        (underTest.take.isPresent must beFalse)
+    }
+
+    "return IDs with the time they were reserved at" in new Context {
+      underTest.reserve(4096, 4096, 1, now - 5)
+
+      underTest.take.get.getTime must_== now - 5
+    }
+
+    "discard ranges that are no longer fresh" in new Context {
+      underTest.reserve(4096, 4096, 1, now - maximumAgeMillis - 1)
+
+      (underTest.take.isPresent must beFalse) and
+        (underTest.remaining must_== 0)
+    }
+
+    "carry on from where it left off when the file is re-opened" in new FileContext {
+      val first = new IdReservationJournal(path, 4, maximumAgeMillis, clock)
+      first.reserve(4096, 4098, 1, now)
+      first.take
+      first.close()
+
+      val second = new IdReservationJournal(path, 4, maximumAgeMillis, clock)
+
+      (second.remaining must_== 2) and
+        (second.take.get.getId must_== 4097)
+    }
+  }
+
+  trait Context extends Scope with ThrownExpectations {
+    val now = 1489959427000L
+    val maximumAgeMillis = 1000L
+    val clock = Clock.fixed(Instant.ofEpochMilli(now), ZoneOffset.UTC)
+
+    val underTest = new IdReservationJournal(2, maximumAgeMillis, clock)
+  }
+
+  trait FileContext extends Context {
+    val path: Path = Files.createTempFile("icicle-journal", ".bin")
+    Files.delete(path)
+    path.toFile.deleteOnExit()
+  }
+}
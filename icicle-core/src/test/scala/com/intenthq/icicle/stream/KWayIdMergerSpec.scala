@@ -0,0 +1,53 @@
+package com.intenthq.icicle.stream
+
+import java.util
+
+import org.specs2.matcher.ThrownExpectations
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+object KWayIdMergerSpec extends Specification {
+  "constructor" should {
+    "throw exception if empty list of sources given" in {
+      new KWayIdMerger(util.Arrays.asList()) must throwA[IllegalArgumentException]
+    }
+  }
+
+  "#nextLong" should {
+    "merge the sources into a single ordered stream" in new Context {
+      val underTest = new KWayIdMerger(util.Arrays.asList(
+        source(id(1, 0), id(3, 0), id(5, 0)),
+        source(id(2, 0), id(2, 1), id(6, 0)),
+        source(id(4, 0))))
+
+      drain(underTest) must_== List(id(1, 0), id(2, 0), id(2, 1), id(3, 0), id(4, 0), id(5, 0), id(6, 0))
+    }
+
+    "skip sources that are empty" in new Context {
+      val underTest = new KWayIdMerger(util.Arrays.asList(source(), source(id(1, 0)), source()))
+
+      drain(underTest) must_== List(id(1, 0))
+    }
+
+    "throw exception once all sources are exhausted" in new Context {
+      val underTest = new KWayIdMerger(util.Arrays.asList(source()))
+
+      (underTest.hasNext must beFalse) and
+        (underTest.nextLong must throwA[NoSuchElementException])
+    }
+  }
+
+  trait Context extends Scope with ThrownExpectations {
+    def id(timestamp: Long, sequence: Long): Long = (timestamp << 22) | sequence
+
+    def source(ids: Long*): util.PrimitiveIterator.OfLong = util.Arrays.stream(ids.toArray).iterator()
+
+    def drain(iterator: util.PrimitiveIterator.OfLong): List[Long] = {
+      var ids = List[Long]()
+      while (iterator.hasNext) {
+        ids :+= iterator.nextLong
+      }
+      ids
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.intenthq.icicle.stream
+
+import java.util
+
+import org.specs2.matcher.ThrownExpectations
+import org.specs2.mutable._
+import org.specs2.specification.Scope
+
+object SkewWindowIdReordererSpec extends Specification {
+  "constructor" should {
+    "throw exception if a negative skew window is given" in new Context {
+      new SkewWindowIdReorderer(source(), -1) must throwA[IllegalArgumentException]
+    }
+
+    "throw exception if a maximum buffered size less than 1 is given" in new Context {
+      new SkewWindowIdReorderer(source(), 1, 0) must throwA[IllegalArgumentException]
+    }
+  }
+
+  "#nextLong" should {
+    "order IDs that arrive within the skew window" in new Context {
+      val underTest = new SkewWindowIdReorderer(source(id(2, 0), id(1, 1), id(3, 0), id(1, 0), id(4, 0), id(6, 0)), 2)
+
+      drain(underTest) must_== List(id(1, 0), id(1, 1), id(2, 0), id(3, 0), id(4, 0), id(6, 0))
+    }
+
+    "release IDs before the source is exhausted once they are outside the window" in new Context {
+      val underTest = new SkewWindowIdReorderer(source(id(2, 0), id(1, 0), id(10, 0), id(20, 0)), 2)
+
+      (underTest.nextLong must_== id(1, 0)) and
+        (underTest.nextLong must_== id(2, 0))
+    }
+
+    "release the smallest ID early if the buffer is full" in new Context {
+      val underTest = new SkewWindowIdReorderer(source(id(3, 0), id(2, 0), id(1, 0)), 100, 2)
+
+      drain(underTest) must_== List(id(2, 0), id(1, 0), id(3, 0))
+    }
+
+    "throw exception once the source is exhausted" in new Context {
+      val underTest = new SkewWindowIdReorderer(source(), 1)
+
+      (underTest.hasNext must beFalse) and
+        (underTest.nextLong must throwA[NoSuchElementException])
+    }
+  }
+
+  trait Context extends Scope with ThrownExpectations {
+    def id(timestamp: Long, sequence: Long): Long = (timestamp << 22) | sequence
+
+    def source(ids: Long*): util.PrimitiveIterator.OfLong = util.Arrays.stream(ids.toArray).iterator()
+
+    def drain(iterator: util.PrimitiveIterator.OfLong): List[Long] = {
+      var ids = List[Long]()
+      while (iterator.hasNext) {
+        ids :+= iterator.nextLong
+      }
+      ids
+    }
+  }
+}